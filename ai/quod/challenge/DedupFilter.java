@@ -0,0 +1,132 @@
+package ai.quod.challenge;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Drop events whose id was already consumed, so hours fed twice (retries, overlapping worker assignments,
+// re-staged files) do not count commits or actors twice and can simply be replayed after a partial failure.
+// Ids are kept in primitive hash sets that stay at most half full, so each id costs 16 to 32 bytes, and up to
+// 48 while a set grows and copies its table. Nothing is evicted: memory grows with every distinct event in the
+// run (a month of GH Archive is a few GB), size the heap for it. The sets are striped like the commit counters
+// so ParallelIngester workers rarely wait for each other.
+class DedupFilter implements EventConsumer {
+    public DedupFilter(EventConsumer _next) {
+        next = _next;
+        segments = new LongHashSet[NUMBER_OF_SEGMENT];
+        for (int i = 0; i < NUMBER_OF_SEGMENT; ++i) {
+            segments[i] = new LongHashSet();
+        }
+        duplicateCounter = new LongAdder();
+    }
+
+    public void consumePushEvent(Event e, PushEventPayLoad payload) {
+        if (markSeen(e.getId())) {
+            next.consumePushEvent(e, payload);
+        }
+    }
+
+    public void consumeIssuesEvent(Event e, IssuesEventPayLoad payload) {
+        if (markSeen(e.getId())) {
+            next.consumeIssuesEvent(e, payload);
+        }
+    }
+
+    public void consumePullRequestEvent(Event e, PullRequestEventPayLoad payload) {
+        if (markSeen(e.getId())) {
+            next.consumePullRequestEvent(e, payload);
+        }
+    }
+
+    public long getDuplicateCounter() {
+        return duplicateCounter.sum();
+    }
+
+    // Return true the first time id is seen.
+    private boolean markSeen(long id) {
+        long hash = LongHashSet.mix(id);
+        LongHashSet segment = segments[(int) (hash >>> 58) & (NUMBER_OF_SEGMENT - 1)];
+        boolean added;
+        synchronized (segment) {
+            added = segment.add(id);
+        }
+        if (!added) {
+            duplicateCounter.increment();
+        }
+
+        return added;
+    }
+
+    private static final int NUMBER_OF_SEGMENT = 64;
+
+    private EventConsumer next;
+    private LongHashSet[] segments;
+    private LongAdder duplicateCounter;
+}
+
+// Open addressing set of longs, no boxing. Not thread safe.
+class LongHashSet {
+    public LongHashSet() {
+        slots = new long[INITIAL_CAPACITY];
+    }
+
+    // Return false if value is already in the set.
+    public boolean add(long value) {
+        // 0 marks an empty slot, so it is tracked on the side
+        if (value == 0) {
+            boolean added = !hasZero;
+            hasZero = true;
+            return added;
+        }
+
+        int mask = slots.length - 1;
+        int i = (int) mix(value) & mask;
+        while (slots[i] != 0) {
+            if (slots[i] == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        slots[i] = value;
+        ++size;
+
+        if (size * 2 > slots.length) {
+            grow();
+        }
+        return true;
+    }
+
+    public int size() {
+        return hasZero ? size + 1 : size;
+    }
+
+    // murmur3 finalizer, event ids are sequential so they need spreading
+    public static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        int mask = slots.length - 1;
+        for (long value : old) {
+            if (value != 0) {
+                int i = (int) mix(value) & mask;
+                while (slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = value;
+            }
+        }
+    }
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private long[] slots;
+    private int size;
+    private boolean hasZero;
+}
@@ -0,0 +1,206 @@
+package ai.quod.challenge;
+
+import java.util.*;
+import java.io.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+// Split a gzip compressed stream of newline separated records (one json event per line in GH Archive)
+// without going through a Reader: data is inflated into one large reusable byte buffer and records are
+// handed out as slices of it, so no char decoding happens here and nothing is allocated per record.
+// Unlike GZIPInputStream + BufferedReader.ready(), it reads to the real end of the stream on slow
+// connections and reads every member of a concatenated gzip file.
+class GzipRecordReader implements Closeable {
+    public interface RecordConsumer {
+        // The slice is only valid during the call, copy it to keep it.
+        void consumeRecord(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    public GzipRecordReader(InputStream _in) {
+        in = _in;
+        input = new byte[INPUT_BUFFER_SIZE];
+        buffer = new byte[OUTPUT_BUFFER_SIZE];
+        inflater = new Inflater(true);
+        crc = new CRC32();
+    }
+
+    // Call consumer for every non empty record. Return number of records.
+    public long forEachRecord(RecordConsumer consumer) throws IOException {
+        long recordCounter = 0;
+        int start = 0; // first byte not handed out yet
+        int scan = 0;  // bytes in [start, scan) contain no newline
+        int end = 0;   // end of inflated data
+        boolean inMember = readHeader(true);
+        while (inMember) {
+            if (end == buffer.length) {
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    scan -= start;
+                    end -= start;
+                    start = 0;
+                } else {
+                    // one record is bigger than the whole buffer
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+
+            int n = inflate(buffer, end, buffer.length - end);
+            if (n < 0) {
+                readTrailer();
+                inMember = readHeader(false);
+                continue;
+            }
+            crc.update(buffer, end, n);
+            end += n;
+
+            for (int i = scan; i < end; ++i) {
+                if (buffer[i] == '\n') {
+                    if (i > start) {
+                        consumer.consumeRecord(buffer, start, i - start);
+                        ++recordCounter;
+                    }
+                    start = i + 1;
+                }
+            }
+            scan = end;
+        }
+
+        // last record may not end with a newline
+        if (end > start) {
+            consumer.consumeRecord(buffer, start, end - start);
+            ++recordCounter;
+        }
+
+        return recordCounter;
+    }
+
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    // Return number of bytes inflated, or -1 at the end of the current gzip member.
+    private int inflate(byte[] b, int offset, int length) throws IOException {
+        while (true) {
+            int n;
+            try {
+                n = inflater.inflate(b, offset, length);
+            } catch (DataFormatException e) {
+                throw new ZipException("Invalid deflate data: " + e.getMessage());
+            }
+
+            if (n > 0) {
+                return n;
+            }
+            if (inflater.finished()) {
+                inputPos = inputEnd - inflater.getRemaining();
+                return -1;
+            }
+            if (inflater.needsDictionary()) {
+                throw new ZipException("Deflate data needs a preset dictionary");
+            }
+            if (inflater.needsInput()) {
+                if (inputPos == inputEnd && !fill()) {
+                    throw new EOFException("Unexpected end of gzip stream");
+                }
+                inflater.setInput(input, inputPos, inputEnd - inputPos);
+                inputPos = inputEnd;
+            }
+        }
+    }
+
+    // Start the next member. Return false at the end of the stream.
+    // Like GZIPInputStream, bytes after a complete member that do not start with the gzip magic
+    // (e.g. zero padding) are ignored and mean end of stream.
+    private boolean readHeader(boolean first) throws IOException {
+        if (inputPos == inputEnd && !fill()) {
+            return false;
+        }
+        if (readUByte() != 0x1f || (!first && inputPos == inputEnd && !fill()) || readUByte() != 0x8b) {
+            if (first) {
+                throw new ZipException("Not in GZIP format");
+            }
+            return false;
+        }
+        if (readUByte() != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = readUByte();
+        skipBytes(6); // mtime, extra flags, os
+        if ((flags & FEXTRA) != 0) {
+            skipBytes(readUByte() | readUByte() << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            while (readUByte() != 0) {
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (readUByte() != 0) {
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            skipBytes(2);
+        }
+
+        inflater.reset();
+        crc.reset();
+        return true;
+    }
+
+    private void readTrailer() throws IOException {
+        long expectedCrc = readUInt();
+        long expectedSize = readUInt();
+        if (expectedCrc != crc.getValue() || expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+    }
+
+    private long readUInt() throws IOException {
+        return (long) readUByte() | (long) readUByte() << 8 | (long) readUByte() << 16 | (long) readUByte() << 24;
+    }
+
+    private void skipBytes(int n) throws IOException {
+        for (int i = 0; i < n; ++i) {
+            readUByte();
+        }
+    }
+
+    private int readUByte() throws IOException {
+        if (inputPos == inputEnd && !fill()) {
+            throw new EOFException("Unexpected end of gzip stream");
+        }
+
+        return input[inputPos++] & 0xff;
+    }
+
+    // Return false at the end of the stream.
+    private boolean fill() throws IOException {
+        int n = 0;
+        while (n == 0) {
+            n = in.read(input, 0, input.length);
+        }
+        if (n < 0) {
+            return false;
+        }
+        inputPos = 0;
+        inputEnd = n;
+        return true;
+    }
+
+    private static final int INPUT_BUFFER_SIZE = 1 << 16;
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private InputStream in;
+    private byte[] input;
+    private int inputPos;
+    private int inputEnd;
+    private byte[] buffer;
+    private Inflater inflater;
+    private CRC32 crc;
+}
@@ -1,41 +1,53 @@
 package ai.quod.challenge;
 
+import java.time.DateTimeException;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.io.*;
-import java.util.zip.GZIPInputStream;
+import java.nio.charset.StandardCharsets;
 import java.net.URL; 
 import java.net.MalformedURLException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.text.DecimalFormat;
 import org.json.JSONException;
 import java.net.URLConnection;
+import java.util.concurrent.*;
  
-class Calculator {
+// Push events may be consumed from many threads at once, the commit counters are striped so a hot repo
+// does not become a point of contention. Issues and pull request events are order sensitive, they must be
+// consumed one at a time in the order they appear in the archive (see ParallelIngester).
+interface EventConsumer {
+    void consumePushEvent(Event e, PushEventPayLoad payload);
+    void consumeIssuesEvent(Event e, IssuesEventPayLoad payload);
+    void consumePullRequestEvent(Event e, PullRequestEventPayLoad payload);
+}
+
+class Calculator implements EventConsumer {
     Calculator(ZonedDateTime _from, ZonedDateTime _to) {
         this.from = _from;
         this.to   = _to;
-        repoIDtoHealthScoreMap = new HashMap<Long, RepoHealthScoreCalculator>();
+        repoIDtoHealthScoreMap = new ConcurrentHashMap<Long, RepoHealthScoreCalculator>();
     }
  
     public void consumePushEvent(Event e, PushEventPayLoad payload) {
         if (!isInTimeRange(e.getZonedDateTime()))
             return;
-        Repo repo = e.getRepo();
-        RepoHealthScoreCalculator repoHealthScore = findRepoHealthScoreCalculator(repo); 
+        RepoHealthScoreCalculator repoHealthScore = findRepoHealthScoreCalculator(e); 
         repoHealthScore.consumePushEvent(e, payload);
     }
 
     public void consumeIssuesEvent(Event e, IssuesEventPayLoad payload) {
         if (!isInTimeRange(e.getZonedDateTime()))
             return;
-        findRepoHealthScoreCalculator(e.getRepo()).consumeIssuesEvent(e, payload); 
+        findRepoHealthScoreCalculator(e).consumeIssuesEvent(e, payload); 
     }
 
     public void consumePullRequestEvent(Event e, PullRequestEventPayLoad payload) {
         if (!isInTimeRange(e.getZonedDateTime()))
             return;
-        findRepoHealthScoreCalculator(e.getRepo()).consumePullRequestEvent(e, payload); 
+        findRepoHealthScoreCalculator(e).consumePullRequestEvent(e, payload); 
     }
 
     public void dumpResultToCSV(String filename) throws IOException{
@@ -86,107 +98,228 @@ class Calculator {
         }
     }
 
+    // Half open, [from, to). An event stamped exactly at an hour sits in that hour's file, so a window
+    // only takes events from the files it reads on its own, whatever other windows share the scan.
     private boolean isInTimeRange(ZonedDateTime t) {
-        if (t.compareTo(to) <= 0 && t.compareTo(from) >= 0) {
+        if (t.compareTo(to) < 0 && t.compareTo(from) >= 0) {
             return true;
         }
 
         return false;
     }
 
-    private RepoHealthScoreCalculator findRepoHealthScoreCalculator(Repo repo) {
-        long repoId = repo.getId();
-        if (!repoIDtoHealthScoreMap.containsKey(repoId)) {
-            repoIDtoHealthScoreMap.put(repoId, new RepoHealthScoreCalculator(repo, from, to));
-        }
+    public ZonedDateTime getFrom() {
+        return from;
+    }
+
+    public ZonedDateTime getTo() {
+        return to;
+    }
 
+    public RepoHealthScoreCalculator getRepoHealthScoreCalculator(long repoId) {
         return repoIDtoHealthScoreMap.get(repoId);
     }
 
+    public Collection<RepoHealthScoreCalculator> getRepoHealthScoreCalculators() {
+        return repoIDtoHealthScoreMap.values();
+    }
+
+    private RepoHealthScoreCalculator findRepoHealthScoreCalculator(Event e) {
+        Repo repo = e.getRepo();
+        RepoHealthScoreCalculator r = repoIDtoHealthScoreMap.get(repo.getId());
+        if (r == null) {
+            r = repoIDtoHealthScoreMap.computeIfAbsent(repo.getId(), id -> new RepoHealthScoreCalculator(repo, from, to));
+        }
+        r.offerRepo(e.getId(), repo);
+
+        return r;
+    }
+
     private ZonedDateTime from;
     private ZonedDateTime to;
-    private HashMap<Long, RepoHealthScoreCalculator> repoIDtoHealthScoreMap;
+    private ConcurrentHashMap<Long, RepoHealthScoreCalculator> repoIDtoHealthScoreMap;
 }
 
 public class HealthScoreCalculator {
 	public static void main(String[] args) throws IOException {
-        if (args.length != 2) {
-            System.out.println("Example: java ai.quod.challenge.HealthScoreCalculator 2019-08-01T00:00:00Z 2019-09-01T00:00:00Z");
-            return; 
+        int numberOfThread = 1;
+        String windowsOption = null;
+        boolean dedup = false;
+        ArrayList<String> positionalArgs = new ArrayList<String>();
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                numberOfThread = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--windows=")) {
+                windowsOption = arg.substring("--windows=".length());
+            } else if (arg.equals("--dedup")) {
+                dedup = true;
+            } else {
+                positionalArgs.add(arg);
+            }
         }
+        args = positionalArgs.toArray(new String[0]);
 
-        ZonedDateTime from = ZonedDateTime.parse(args[0]);
-        ZonedDateTime to = ZonedDateTime.parse(args[1]);
+        // With --windows the time range comes from the option, the only positional argument left is the data dir.
+        int numberOfTimeArg = windowsOption == null ? 2 : 0;
+        if ((args.length != numberOfTimeArg && args.length != numberOfTimeArg + 1) || numberOfThread <= 0) {
+            printUsage();
+            return; 
+        }
 
-        if (from.compareTo(to) >= 0) {
-            System.out.println("start time must smaller than end time!");
+        ArrayList<Calculator> calculators = new ArrayList<Calculator>();
+        try {
+            if (windowsOption == null) {
+                calculators.add(new Calculator(ZonedDateTime.parse(args[0]), ZonedDateTime.parse(args[1])));
+            } else {
+                calculators = MultiWindowCalculator.parseWindows(windowsOption);
+            }
+        } catch (IllegalArgumentException | DateTimeException e) {
+            System.out.println(e.getMessage());
+            printUsage();
             return;
         }
 
-        Calculator calculator = new Calculator(from, to);
-        ArrayList<URL> urls = makeResourceURLs(from, to);
+        for (Calculator c : calculators) {
+            if (c.getFrom().compareTo(c.getTo()) >= 0) {
+                System.out.println("start time must smaller than end time!");
+                return;
+            }
+        }
+
+        String baseURL = GH_ARCHIVE_URL;
+        if (args.length == numberOfTimeArg + 1) {
+            baseURL = makeLocalBaseURL(args[numberOfTimeArg]);
+        }
+
+        MultiWindowCalculator calculator = new MultiWindowCalculator(calculators);
+        ArrayList<URL> urls = calculator.makeResourceURLs(baseURL);
 
         for (URL u : urls) {
             System.out.println(u);
         }
         
-        for (URL url : urls) {
-            URLConnection urlc = url.openConnection();
-            urlc.setRequestProperty("User-Agent", "Mozilla 5.0 (Windows; U; "
-                    + "Windows NT 5.1; en-US; rv:1.8.0.11) ");
-            try (GZIPInputStream in = new GZIPInputStream(urlc.getInputStream())){
-                BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-                while(reader.ready()) {
-                    String line = reader.readLine();
-                    try {
-                        Event event = new Event(line);
-                        switch(event.getType()) {
-                            case PushEvent:
-                                PushEventPayLoad pushEventPayLoad = new PushEventPayLoad(line);
-                                calculator.consumePushEvent(event, pushEventPayLoad);
-                                break;
-                            case IssuesEvent:
-                                IssuesEventPayLoad issuesEventPayLoad = new IssuesEventPayLoad(line);
-                                calculator.consumeIssuesEvent(event, issuesEventPayLoad);
-                                break;
-                            case PullRequestEvent:
-                                PullRequestEventPayLoad pullRequestEventPayLoad = new PullRequestEventPayLoad(line);
-                                break;
-                            default:
-                                break;
-                        }
-                    } catch (JSONException e) {
-                        System.out.println("Fail to parse json, input:\n" + line + "\ngot exception:" + e);
-                        continue;
-                    }
-                }
-                reader.close();
+        // Replaying an hour is only safe when events already counted are dropped, so only retry with --dedup.
+        EventConsumer consumer = calculator;
+        DedupFilter dedupFilter = null;
+        int maxRetry = 0;
+        if (dedup) {
+            dedupFilter = new DedupFilter(calculator);
+            consumer = dedupFilter;
+            maxRetry = MAX_RETRY_WITH_DEDUP;
+        }
+
+        if (numberOfThread == 1) {
+            for (URL url : urls) {
+                consumeResource(consumer, url, maxRetry);
+            }
+        } else {
+            ParallelIngester ingester = new ParallelIngester(consumer, numberOfThread, maxRetry);
+            try {
+                ingester.consumeResources(urls);
+            } finally {
+                ingester.shutdown();
+            }
+        }
+        if (dedupFilter != null) {
+            System.out.println("dropped " + dedupFilter.getDuplicateCounter() + " duplicate events");
+        }
+        if (windowsOption == null) {
+            calculators.get(0).dumpResultToCSV("health_scores.csv");
+        } else {
+            for (Calculator c : calculators) {
+                String filename = MultiWindowCalculator.makeCSVFilename(c);
+                System.out.println("write " + filename);
+                c.dumpResultToCSV(filename);
             }
         }
-        calculator.dumpResultToCSV("health_scores.csv");
 	}
 
-    private static URL makeResourceURL(ZonedDateTime time) throws MalformedURLException {
+    private static void printUsage() {
+        System.out.println("Example: java ai.quod.challenge.HealthScoreCalculator 2019-08-01T00:00:00Z 2019-09-01T00:00:00Z [local_data_dir] [--threads=N] [--dedup]");
+        System.out.println("     or: java ai.quod.challenge.HealthScoreCalculator --windows=2019-08-01T00:00:00Z/2019-08-02T00:00:00Z,2019-08-01T00:00:00Z/2019-08-08T00:00:00Z [local_data_dir] [--threads=N] [--dedup]");
+    }
+
+    // Download (or open, for file: urls) one hourly archive and feed every event of it to calculator.
+    // Return number of lines read.
+    public static long consumeResource(EventConsumer calculator, URL url) throws IOException {
+        try (GzipRecordReader reader = openResource(url)) {
+            return reader.forEachRecord((buffer, offset, length) -> consumeLine(calculator, new String(buffer, offset, length, StandardCharsets.UTF_8)));
+        }
+    }
+
+    // Read url again from the start when the download breaks off, at most maxRetry times.
+    public static long consumeResource(EventConsumer calculator, URL url, int maxRetry) throws IOException {
+        for (int attempt = 0; ; ++attempt) {
+            try {
+                return consumeResource(calculator, url);
+            } catch (IOException e) {
+                if (attempt >= maxRetry || !isRetryable(e)) {
+                    throw e;
+                }
+                System.out.println("Fail to read " + url + ", got exception: " + e + ", retry");
+            }
+        }
+    }
+
+    // Only transport errors are worth another read: a stream cut short, a reset or refused connection, a read timeout.
+    // A corrupt archive (ZipException) or a missing hour (FileNotFoundException, also HTTP 404) fails the same way
+    // every time, and an interrupt means stop, not try again.
+    public static boolean isRetryable(IOException e) {
+        if (Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+
+        return e instanceof EOFException || e instanceof SocketException || e instanceof SocketTimeoutException;
+    }
+
+    public static void consumeLine(EventConsumer calculator, String line) {
+        try {
+            Event event = new Event(line);
+            switch(event.getType()) {
+                case PushEvent:
+                    PushEventPayLoad pushEventPayLoad = new PushEventPayLoad(line);
+                    calculator.consumePushEvent(event, pushEventPayLoad);
+                    break;
+                case IssuesEvent:
+                    IssuesEventPayLoad issuesEventPayLoad = new IssuesEventPayLoad(line);
+                    calculator.consumeIssuesEvent(event, issuesEventPayLoad);
+                    break;
+                case PullRequestEvent:
+                    PullRequestEventPayLoad pullRequestEventPayLoad = new PullRequestEventPayLoad(line);
+                    break;
+                default:
+                    break;
+            }
+        } catch (JSONException e) {
+            System.out.println("Fail to parse json, input:\n" + line + "\ngot exception:" + e);
+        }
+    }
+
+    public static GzipRecordReader openResource(URL url) throws IOException {
+        URLConnection urlc = url.openConnection();
+        urlc.setRequestProperty("User-Agent", "Mozilla 5.0 (Windows; U; "
+                + "Windows NT 5.1; en-US; rv:1.8.0.11) ");
+        return new GzipRecordReader(urlc.getInputStream());
+    }
+
+    public static String makeResourceName(ZonedDateTime time) {
         int year = time.getYear();
         int month = time.getMonthValue();
         int day = time.getDayOfMonth();
         int hour = time.getHour();
-        return new URL("https://data.gharchive.org/" + year + '-' + new DecimalFormat("00").format(month) + '-' + new DecimalFormat("00").format(day) + '-' + hour + ".json.gz");
+        return "" + year + '-' + new DecimalFormat("00").format(month) + '-' + new DecimalFormat("00").format(day) + '-' + hour + ".json.gz";
     }
 
-    private static ArrayList<URL> makeResourceURLs(ZonedDateTime begin, ZonedDateTime end) throws MalformedURLException {
-        ArrayList<URL> urls = new ArrayList<URL>();
-        ZonedDateTime iterateTime = begin.withMinute(0).withSecond(0);
-        while (iterateTime.compareTo(end) < 0) {
-            URL url = makeResourceURL(iterateTime);
-            urls.add(url);
-            iterateTime = iterateTime.plusHours(1);  
-        } 
+    // Hour files in dir must be named like the ones on data.gharchive.org, e.g. 2019-08-01-1.json.gz
+    public static String makeLocalBaseURL(String dir) throws MalformedURLException {
+        String url = new File(dir).getAbsoluteFile().toURI().toURL().toString();
+        if (!url.endsWith("/")) {
+            url += '/';
+        }
 
-        return urls;
+        return url;
     }
 
-
-    
+    public static final String GH_ARCHIVE_URL = "https://data.gharchive.org/";
+    public static final int MAX_RETRY_WITH_DEDUP = 3;
 }
-
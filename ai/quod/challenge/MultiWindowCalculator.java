@@ -0,0 +1,85 @@
+package ai.quod.challenge;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.net.URL;
+import java.net.MalformedURLException;
+
+// Score several time windows (e.g. a day, a week and a month) in one pass over the archives.
+// Every hour file is downloaded and parsed once, each parsed event is then handed to the Calculator of
+// every window it falls in. Windows may overlap or have gaps between them, each window gets the same result
+// as a run of HealthScoreCalculator over that window alone.
+class MultiWindowCalculator implements EventConsumer {
+    public MultiWindowCalculator(List<Calculator> _calculators) {
+        calculators = new ArrayList<Calculator>(_calculators);
+    }
+
+    public void consumePushEvent(Event e, PushEventPayLoad payload) {
+        for (Calculator c : calculators) {
+            c.consumePushEvent(e, payload);
+        }
+    }
+
+    public void consumeIssuesEvent(Event e, IssuesEventPayLoad payload) {
+        for (Calculator c : calculators) {
+            c.consumeIssuesEvent(e, payload);
+        }
+    }
+
+    public void consumePullRequestEvent(Event e, PullRequestEventPayLoad payload) {
+        for (Calculator c : calculators) {
+            c.consumePullRequestEvent(e, payload);
+        }
+    }
+
+    // Parse windows written like from/to,from/to,... Bad times throw DateTimeException.
+    // A window given twice would write its CSV twice into the same file, so it is rejected.
+    public static ArrayList<Calculator> parseWindows(String windows) {
+        ArrayList<Calculator> calculators = new ArrayList<Calculator>();
+        HashSet<String> filenames = new HashSet<String>();
+        for (String window : windows.split(",")) {
+            String[] parts = window.split("/");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("window must look like from/to, got: " + window);
+            }
+            Calculator c = new Calculator(ZonedDateTime.parse(parts[0]), ZonedDateTime.parse(parts[1]));
+            if (!filenames.add(makeCSVFilename(c))) {
+                throw new IllegalArgumentException("window given more than once: " + window);
+            }
+            calculators.add(c);
+        }
+
+        return calculators;
+    }
+
+    public List<Calculator> getCalculators() {
+        return calculators;
+    }
+
+    // Hour files needed by at least one window, each listed once and in time order.
+    public ArrayList<URL> makeResourceURLs(String baseURL) throws MalformedURLException {
+        TreeMap<String, URL> sortedURLs = new TreeMap<String, URL>();
+        for (Calculator c : calculators) {
+            ZonedDateTime iterateTime = c.getFrom().withZoneSameInstant(ZoneOffset.UTC).withMinute(0).withSecond(0).withNano(0);
+            while (iterateTime.compareTo(c.getTo()) < 0) {
+                sortedURLs.put(SORT_KEY_FORMAT.format(iterateTime), new URL(baseURL + HealthScoreCalculator.makeResourceName(iterateTime)));
+                iterateTime = iterateTime.plusHours(1);
+            }
+        }
+
+        return new ArrayList<URL>(sortedURLs.values());
+    }
+
+    public static String makeCSVFilename(Calculator c) {
+        return "health_scores_" + FILENAME_TIME_FORMAT.format(c.getFrom().withZoneSameInstant(ZoneOffset.UTC)) + '_' +
+                FILENAME_TIME_FORMAT.format(c.getTo().withZoneSameInstant(ZoneOffset.UTC)) + ".csv";
+    }
+
+    private static final DateTimeFormatter SORT_KEY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHH");
+    // No ':' so the name is valid on every file system.
+    private static final DateTimeFormatter FILENAME_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    private ArrayList<Calculator> calculators;
+}
@@ -0,0 +1,183 @@
+package ai.quod.challenge;
+
+import java.util.*;
+import java.io.*;
+import java.net.URL;
+import java.util.concurrent.*;
+import java.nio.charset.StandardCharsets;
+
+// Feed hourly archives to one shared Calculator (or MultiWindowCalculator) from many threads.
+// The reading thread cuts the archive into batches of raw lines, worker threads decode and parse them and consume push events
+// straight into the calculator. Issues and pull request events depend on the order they happen in, so workers
+// hand them back and the reading thread consumes them batch by batch in archive order.
+// The result is the same as HealthScoreCalculator.consumeResource over the same urls.
+// A url whose download breaks off is read again from the start up to maxRetry times (see
+// HealthScoreCalculator.isRetryable), only do it with a DedupFilter in front. A failure inside a worker is a bug or bad data, not a read error, so it is thrown as
+// IngestWorkerException and never retried.
+class ParallelIngester {
+    public ParallelIngester(EventConsumer _calculator, int _numberOfThread, int _maxRetry) {
+        calculator = _calculator;
+        numberOfThread = _numberOfThread;
+        maxRetry = _maxRetry;
+        executor = Executors.newFixedThreadPool(numberOfThread, r -> {
+            Thread t = new Thread(r, "ingester");
+            t.setDaemon(true);
+            return t;
+        });
+        inFlightBatches = new ArrayDeque<Future<List<Runnable>>>();
+        batch = new RecordBatch();
+    }
+
+    // Return number of lines read.
+    public long consumeResources(List<URL> urls) throws IOException {
+        long lineCounter = 0;
+        for (URL url : urls) {
+            for (int attempt = 0; ; ++attempt) {
+                try (GzipRecordReader reader = HealthScoreCalculator.openResource(url)) {
+                    lineCounter += reader.forEachRecord((buffer, offset, length) -> {
+                        batch.add(buffer, offset, length);
+                        if (batch.size() == BATCH_SIZE) {
+                            submit(batch);
+                            batch = new RecordBatch();
+                        }
+                    });
+                    break;
+                } catch (IOException e) {
+                    if (attempt >= maxRetry || !HealthScoreCalculator.isRetryable(e)) {
+                        throw e;
+                    }
+                    System.out.println("Fail to read " + url + ", got exception: " + e + ", retry");
+                }
+            }
+            if (batch.size() > 0) {
+                submit(batch);
+                batch = new RecordBatch();
+            }
+        }
+
+        while (!inFlightBatches.isEmpty()) {
+            completeOldestBatch();
+        }
+
+        return lineCounter;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void submit(RecordBatch batch) throws IOException {
+        // Bound the number of parsed but not yet consumed batches so memory stays flat on big archives.
+        while (inFlightBatches.size() >= numberOfThread * MAX_IN_FLIGHT_BATCH_PER_THREAD) {
+            completeOldestBatch();
+        }
+        RecordBatch submitted = batch;
+        inFlightBatches.addLast(executor.submit(() -> consumeBatch(submitted)));
+    }
+
+    private void completeOldestBatch() throws IOException {
+        List<Runnable> orderedWork;
+        try {
+            orderedWork = inFlightBatches.removeFirst().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for ingest workers");
+        } catch (ExecutionException e) {
+            throw new IngestWorkerException(e.getCause());
+        }
+
+        for (Runnable r : orderedWork) {
+            r.run();
+        }
+    }
+
+    // Run on worker threads. Return the order sensitive part of the batch.
+    private List<Runnable> consumeBatch(RecordBatch batch) {
+        OrderedWorkQueue queue = new OrderedWorkQueue(calculator);
+        for (int i = 0; i < batch.size(); ++i) {
+            HealthScoreCalculator.consumeLine(queue, batch.get(i));
+        }
+
+        return queue.getOrderedWork();
+    }
+
+    static final int BATCH_SIZE = 1024;
+    private static final int MAX_IN_FLIGHT_BATCH_PER_THREAD = 4;
+
+    private EventConsumer calculator;
+    private int numberOfThread;
+    private int maxRetry;
+    private ExecutorService executor;
+    private ArrayDeque<Future<List<Runnable>>> inFlightBatches;
+    private RecordBatch batch;
+}
+
+class IngestWorkerException extends RuntimeException {
+    public IngestWorkerException(Throwable cause) {
+        super("ingest worker failed: " + cause, cause);
+    }
+
+    private static final long serialVersionUID = 1L;
+}
+
+// Push events go straight to the shared calculator, order sensitive events are queued for the reading thread.
+class OrderedWorkQueue implements EventConsumer {
+    public OrderedWorkQueue(EventConsumer _calculator) {
+        calculator = _calculator;
+        orderedWork = new ArrayList<Runnable>();
+    }
+
+    public void consumePushEvent(Event e, PushEventPayLoad payload) {
+        calculator.consumePushEvent(e, payload);
+    }
+
+    public void consumeIssuesEvent(Event e, IssuesEventPayLoad payload) {
+        orderedWork.add(() -> calculator.consumeIssuesEvent(e, payload));
+    }
+
+    public void consumePullRequestEvent(Event e, PullRequestEventPayLoad payload) {
+        orderedWork.add(() -> calculator.consumePullRequestEvent(e, payload));
+    }
+
+    public List<Runnable> getOrderedWork() {
+        return orderedWork;
+    }
+
+    private EventConsumer calculator;
+    private ArrayList<Runnable> orderedWork;
+}
+
+// Raw lines packed back to back in one byte array, decoded by the worker that parses them.
+class RecordBatch {
+    public RecordBatch() {
+        bytes = new byte[INITIAL_CAPACITY];
+        ends = new int[ParallelIngester.BATCH_SIZE];
+    }
+
+    public void add(byte[] buffer, int offset, int length) {
+        int begin = size == 0 ? 0 : ends[size - 1];
+        if (begin + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, begin + length));
+        }
+        if (size == ends.length) {
+            ends = Arrays.copyOf(ends, ends.length * 2);
+        }
+        System.arraycopy(buffer, offset, bytes, begin, length);
+        ends[size++] = begin + length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String get(int i) {
+        int begin = i == 0 ? 0 : ends[i - 1];
+        return new String(bytes, begin, ends[i] - begin, StandardCharsets.UTF_8);
+    }
+
+    private static final int INITIAL_CAPACITY = 1 << 20;
+
+    private byte[] bytes;
+    private int[] ends;
+    private int size;
+}
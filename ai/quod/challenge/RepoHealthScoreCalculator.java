@@ -16,10 +16,13 @@ import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.lang.Exception;
 import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
  
 class RepoHealthScoreCalculator {
     public RepoHealthScoreCalculator(Repo _repo, ZonedDateTime from, ZonedDateTime to) {
         repo = _repo;
+        repoEventId = Long.MAX_VALUE;
         numberOfCommitPerDayScoreCalculator = new NumberOfCommitPerDayScoreCalculator(from, to);
         numberOfCommitPerDeveloperScoreCalculator = new NumberOfCommitPerDeveloperScoreCalculator();
         averageIssueOpenTimeScoreCalculator = new AverageIssueOpenTimeScoreCalculator(from, to);
@@ -39,6 +42,24 @@ class RepoHealthScoreCalculator {
         pullRequestAverageMergeTimeScoreCalculator.consumePullRequestEvent(event, payload);
     }
 
+    // A renamed repo keeps its id, so its events may carry different names. Keep the name of the event with
+    // the lowest id so the result does not depend on which ingest thread got here first.
+    public void offerRepo(long eventId, Repo _repo) {
+        if (eventId >= repoEventId) {
+            return;
+        }
+        synchronized (this) {
+            if (eventId < repoEventId) {
+                repo = _repo;
+                repoEventId = eventId;
+            }
+        }
+    }
+
+    public Repo getRepo() {
+        return repo;
+    }
+
     public NumberOfCommitPerDayScoreCalculator getNumberOfCommitPerDayScoreCalculator() {
         return numberOfCommitPerDayScoreCalculator;
     } 
@@ -79,7 +100,8 @@ class RepoHealthScoreCalculator {
                 pullRequestAverageMergeTimeScoreCalculator.getAverageMergeTime();
     }
     
-    private Repo repo;
+    private volatile Repo repo;
+    private volatile long repoEventId;
     private NumberOfCommitPerDayScoreCalculator numberOfCommitPerDayScoreCalculator;
     private NumberOfCommitPerDeveloperScoreCalculator numberOfCommitPerDeveloperScoreCalculator;
     private AverageIssueOpenTimeScoreCalculator averageIssueOpenTimeScoreCalculator;
@@ -112,9 +134,11 @@ class RepoHealthScoreCalculator {
 	}
 }
 
+// Thread safe, commitCounter is a striped counter so concurrent pushes to a hot repo do not contend.
 class NumberOfCommitPerDayScoreCalculator {
     public NumberOfCommitPerDayScoreCalculator(ZonedDateTime from, ZonedDateTime to) {
         numberOfDay = 0;
+        commitCounter = new LongAdder();
         
         ZonedDateTime iterateTime = from;
         while (iterateTime.compareTo(to) <= 0) {
@@ -124,43 +148,49 @@ class NumberOfCommitPerDayScoreCalculator {
     }
 
     public void consumePushEvent(Event event, PushEventPayLoad payload) {
-        commitCounter += payload.getNumberOfDistinctCommit();       
+        commitCounter.add(payload.getNumberOfDistinctCommit());
     }
 
     public int getCommitCounter() {
-        return commitCounter;
+        return commitCounter.intValue();
     }
 
     public float getNumberOfCommitPerDay() {
-        return (float) commitCounter/ numberOfDay;
+        return (float) getCommitCounter()/ numberOfDay;
     }
 
     public float getScore(int maxCommitCounter) {
         if (maxCommitCounter == 0) {
             return 0;
         }
-        return (float) commitCounter/maxCommitCounter;
+        return (float) getCommitCounter()/maxCommitCounter;
     }
 
     private int numberOfDay;
-    private int commitCounter;
+    private LongAdder commitCounter;
 }
 
+// Thread safe, see NumberOfCommitPerDayScoreCalculator.
 class NumberOfCommitPerDeveloperScoreCalculator {
     public NumberOfCommitPerDeveloperScoreCalculator() {
-        actorIds = new TreeSet<Long>();
+        commitCounter = new LongAdder();
+        actorIds = ConcurrentHashMap.newKeySet();
     }
 
     public void consumePushEvent(Event event, PushEventPayLoad payload) {
-        commitCounter += payload.getNumberOfDistinctCommit();       
-        actorIds.add(event.getActorId());
+        commitCounter.add(payload.getNumberOfDistinctCommit());
+        // Most pushes come from an actor we already know, a plain lookup avoids locking the bin.
+        long actorId = event.getActorId();
+        if (!actorIds.contains(actorId)) {
+            actorIds.add(actorId);
+        }
     }
     
     public float getNumberOfCommitPerDeveloper() {
         if (actorIds.size() == 0) {
             return 0;
         }
-        return (float) commitCounter/ actorIds.size();
+        return (float) commitCounter.intValue()/ actorIds.size();
     }
 
     public float getScore(float maxNumberOfCommitPerDeveloper) {
@@ -168,11 +198,11 @@ class NumberOfCommitPerDeveloperScoreCalculator {
             return 0;
         }
 
-        return (float) commitCounter/ (actorIds.size() * maxNumberOfCommitPerDeveloper);
+        return (float) commitCounter.intValue()/ (actorIds.size() * maxNumberOfCommitPerDeveloper);
     }
 
-    private int commitCounter;
-    private TreeSet<Long> actorIds;
+    private LongAdder commitCounter;
+    private Set<Long> actorIds;
 }
 
 class AverageIssueOpenTimeScoreCalculator {
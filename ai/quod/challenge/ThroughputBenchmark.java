@@ -0,0 +1,276 @@
+package ai.quod.challenge;
+
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.io.*;
+import java.net.URL;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+// End to end throughput check: run the same code path as HealthScoreCalculator.main over local hour files
+// (see WorkloadGenerator) and compare events/sec, peak heap and GC time against a baseline file.
+// Exit with status 1 when any of them regresses by more than --max-regression, e.g.
+//   java ai.quod.challenge.ThroughputBenchmark /tmp/gh 2019-08-01T00:00:00Z 2019-08-01T02:00:00Z --baseline=bench.properties
+// If the baseline file does not exist, it is created from this run.
+// With --threads=N the files are ingested by ParallelIngester, and --verify first checks that N threads
+// produce exactly the same per repo numbers as a single threaded run.
+// --verify-windows=from/to,from/to,... checks that scoring the windows in one scan gives every window the same
+// per repo numbers as a run over that window alone.
+class BenchmarkResult {
+    public BenchmarkResult(double _eventsPerSecond, long _peakHeapBytes, long _gcMillis) {
+        eventsPerSecond = _eventsPerSecond;
+        peakHeapBytes = _peakHeapBytes;
+        gcMillis = _gcMillis;
+    }
+
+    public static BenchmarkResult load(File f) throws IOException {
+        Properties p = new Properties();
+        try (InputStream in = new FileInputStream(f)) {
+            p.load(in);
+        }
+
+        return new BenchmarkResult(Double.parseDouble(p.getProperty("events_per_second")),
+                Long.parseLong(p.getProperty("peak_heap_bytes")),
+                Long.parseLong(p.getProperty("gc_millis")));
+    }
+
+    public void save(File f) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("events_per_second", Double.toString(eventsPerSecond));
+        p.setProperty("peak_heap_bytes", Long.toString(peakHeapBytes));
+        p.setProperty("gc_millis", Long.toString(gcMillis));
+        try (OutputStream out = new FileOutputStream(f)) {
+            p.store(out, "ThroughputBenchmark baseline");
+        }
+    }
+
+    public double getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    public String toString() {
+        return String.format("events/sec=%.0f peak_heap=%dMB gc=%dms", eventsPerSecond, peakHeapBytes >> 20, gcMillis);
+    }
+
+    private double eventsPerSecond;
+    private long peakHeapBytes;
+    private long gcMillis;
+}
+
+public class ThroughputBenchmark {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Example: java ai.quod.challenge.ThroughputBenchmark data_dir 2019-08-01T00:00:00Z 2019-08-01T02:00:00Z [--baseline=file] [--max-regression=0.1] [--iterations=3] [--update-baseline] [--threads=N] [--verify] [--verify-windows=from/to,...]");
+            return;
+        }
+
+        ZonedDateTime from = ZonedDateTime.parse(args[1]);
+        ZonedDateTime to = ZonedDateTime.parse(args[2]);
+        File baselineFile = null;
+        double maxRegression = 0.1;
+        int iterations = 3;
+        boolean updateBaseline = false;
+        int numberOfThread = 1;
+        boolean verify = false;
+        String verifyWindows = null;
+        for (int i = 3; i < args.length; ++i) {
+            if (args[i].startsWith("--baseline=")) {
+                baselineFile = new File(args[i].substring("--baseline=".length()));
+            } else if (args[i].startsWith("--max-regression=")) {
+                maxRegression = Double.parseDouble(args[i].substring("--max-regression=".length()));
+            } else if (args[i].startsWith("--iterations=")) {
+                iterations = Integer.parseInt(args[i].substring("--iterations=".length()));
+            } else if (args[i].equals("--update-baseline")) {
+                updateBaseline = true;
+            } else if (args[i].startsWith("--threads=")) {
+                numberOfThread = Integer.parseInt(args[i].substring("--threads=".length()));
+            } else if (args[i].equals("--verify")) {
+                verify = true;
+            } else if (args[i].startsWith("--verify-windows=")) {
+                verifyWindows = args[i].substring("--verify-windows=".length());
+            } else {
+                System.out.println("unknown option: " + args[i]);
+                return;
+            }
+        }
+
+        // Same url list as HealthScoreCalculator.main builds for this window.
+        ArrayList<URL> urls = new MultiWindowCalculator(Arrays.asList(new Calculator(from, to))).makeResourceURLs(HealthScoreCalculator.makeLocalBaseURL(args[0]));
+
+        if (verify && !verifyAgainstSingleThread(urls, from, to, numberOfThread)) {
+            System.exit(1);
+        }
+        if (verifyWindows != null && !verifyWindowsAgainstSingleWindow(HealthScoreCalculator.makeLocalBaseURL(args[0]), verifyWindows, numberOfThread)) {
+            System.exit(1);
+        }
+
+        // The first iteration is warm up, keep the best of the others so the check is not flaky.
+        BenchmarkResult best = null;
+        for (int i = 0; i <= iterations; ++i) {
+            BenchmarkResult result = runOnce(urls, from, to, numberOfThread);
+            System.out.println((i == 0 ? "warm up: " : "iteration " + i + ": ") + result);
+            if (i == 0) {
+                continue;
+            }
+            if (best == null || result.getEventsPerSecond() > best.getEventsPerSecond()) {
+                best = result;
+            }
+        }
+        System.out.println("result: " + best);
+
+        if (baselineFile == null) {
+            return;
+        }
+
+        if (updateBaseline || !baselineFile.exists()) {
+            best.save(baselineFile);
+            System.out.println("baseline written to " + baselineFile);
+            return;
+        }
+
+        BenchmarkResult baseline = BenchmarkResult.load(baselineFile);
+        System.out.println("baseline: " + baseline);
+        ArrayList<String> regressions = new ArrayList<String>();
+        if (best.getEventsPerSecond() < baseline.getEventsPerSecond() * (1 - maxRegression)) {
+            regressions.add("events/sec dropped from " + baseline.getEventsPerSecond() + " to " + best.getEventsPerSecond());
+        }
+        if (best.getPeakHeapBytes() > baseline.getPeakHeapBytes() * (1 + maxRegression)) {
+            regressions.add("peak heap grew from " + baseline.getPeakHeapBytes() + " to " + best.getPeakHeapBytes());
+        }
+        // GC time of short runs is tiny and noisy, allow some absolute slack on top of the ratio.
+        if (best.getGcMillis() > baseline.getGcMillis() * (1 + maxRegression) + GC_SLACK_MILLIS) {
+            regressions.add("gc time grew from " + baseline.getGcMillis() + "ms to " + best.getGcMillis() + "ms");
+        }
+
+        if (!regressions.isEmpty()) {
+            for (String r : regressions) {
+                System.out.println("REGRESSION: " + r);
+            }
+            System.exit(1);
+        }
+        System.out.println("no regression");
+    }
+
+    private static BenchmarkResult runOnce(ArrayList<URL> urls, ZonedDateTime from, ZonedDateTime to, int numberOfThread) throws IOException {
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+        long gcMillisBefore = totalGcMillis();
+
+        long start = System.nanoTime();
+        Calculator calculator = new Calculator(from, to);
+        long eventCounter = ingest(calculator, urls, numberOfThread);
+        File output = File.createTempFile("health_scores", ".csv");
+        try {
+            calculator.dumpResultToCSV(output.getPath());
+        } finally {
+            output.delete();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // Sum of per pool peaks, it over-estimates the real peak a bit but is stable between runs.
+        long peakHeapBytes = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeapBytes += pool.getPeakUsage().getUsed();
+        }
+
+        return new BenchmarkResult(eventCounter * 1e9 / elapsed, peakHeapBytes, totalGcMillis() - gcMillisBefore);
+    }
+
+    private static long ingest(EventConsumer calculator, ArrayList<URL> urls, int numberOfThread) throws IOException {
+        if (numberOfThread == 1) {
+            long lineCounter = 0;
+            for (URL url : urls) {
+                lineCounter += HealthScoreCalculator.consumeResource(calculator, url);
+            }
+            return lineCounter;
+        }
+
+        ParallelIngester ingester = new ParallelIngester(calculator, numberOfThread, 0);
+        try {
+            return ingester.consumeResources(urls);
+        } finally {
+            ingester.shutdown();
+        }
+    }
+
+    // Stress the shared state a few times and compare every repo with the single threaded result.
+    private static boolean verifyAgainstSingleThread(ArrayList<URL> urls, ZonedDateTime from, ZonedDateTime to, int numberOfThread) throws IOException {
+        Calculator expected = new Calculator(from, to);
+        ingest(expected, urls, 1);
+        for (int round = 1; round <= VERIFY_ROUNDS; ++round) {
+            Calculator actual = new Calculator(from, to);
+            ingest(actual, urls, numberOfThread);
+            if (countMismatch(expected, actual) != 0) {
+                System.out.println("verify round " + round + " with " + numberOfThread + " threads failed");
+                return false;
+            }
+        }
+        System.out.println("verify: " + numberOfThread + " threads match single thread in " + VERIFY_ROUNDS + " rounds");
+
+        return true;
+    }
+
+    private static boolean verifyWindowsAgainstSingleWindow(String baseURL, String windows, int numberOfThread) throws IOException {
+        MultiWindowCalculator scan = new MultiWindowCalculator(MultiWindowCalculator.parseWindows(windows));
+        ingest(scan, scan.makeResourceURLs(baseURL), numberOfThread);
+        boolean ok = true;
+        for (Calculator actual : scan.getCalculators()) {
+            MultiWindowCalculator alone = new MultiWindowCalculator(Arrays.asList(new Calculator(actual.getFrom(), actual.getTo())));
+            ingest(alone, alone.makeResourceURLs(baseURL), numberOfThread);
+            if (countMismatch(alone.getCalculators().get(0), actual) != 0) {
+                System.out.println("verify window " + actual.getFrom() + "/" + actual.getTo() + " failed");
+                ok = false;
+            }
+        }
+        if (ok) {
+            System.out.println("verify: " + scan.getCalculators().size() + " windows scored in one scan match single window runs");
+        }
+
+        return ok;
+    }
+
+    private static int countMismatch(Calculator expected, Calculator actual) {
+        int mismatchCounter = 0;
+        if (actual.getRepoHealthScoreCalculators().size() != expected.getRepoHealthScoreCalculators().size()) {
+            System.out.println("VERIFY: " + expected.getRepoHealthScoreCalculators().size() + " repos expected, got " + actual.getRepoHealthScoreCalculators().size());
+            ++mismatchCounter;
+        }
+        for (RepoHealthScoreCalculator e : expected.getRepoHealthScoreCalculators()) {
+            RepoHealthScoreCalculator a = actual.getRepoHealthScoreCalculator(e.getRepo().getId());
+            if (a == null || !a.toCSVData().equals(e.toCSVData())) {
+                System.out.println("VERIFY: repo " + e.getRepo().getId() + " expected " + e.toCSVData() + ", got " + (a == null ? "nothing" : a.toCSVData()));
+                ++mismatchCounter;
+            }
+        }
+
+        return mismatchCounter;
+    }
+
+    private static long totalGcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+
+        return total;
+    }
+
+    private static final long GC_SLACK_MILLIS = 50;
+    private static final int VERIFY_ROUNDS = 5;
+}
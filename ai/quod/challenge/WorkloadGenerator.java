@@ -0,0 +1,343 @@
+package ai.quod.challenge;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.io.*;
+import java.util.zip.GZIPOutputStream;
+import java.nio.charset.StandardCharsets;
+
+// Write synthetic hourly archives in the same format and with the same file names as data.gharchive.org
+// so HealthScoreCalculator can be run offline against them, e.g.
+//   java ai.quod.challenge.WorkloadGenerator /tmp/gh 2019-08-01T00:00:00Z --hours=2 --repos=10000 --zipf=1.2
+//   java ai.quod.challenge.HealthScoreCalculator 2019-08-01T00:00:00Z 2019-08-01T02:00:00Z /tmp/gh
+class WorkloadConfig {
+    public WorkloadConfig() {
+        hours = 1;
+        eventsPerFile = 100000;
+        numberOfRepo = 10000;
+        zipfExponent = 1.0;
+        actorsPerRepo = 5;
+        issuesPerRepo = 20;
+        pullRequestsPerRepo = 10;
+        maxCommitPerPush = 20;
+        payloadPadding = 512;
+        pushWeight = 50;
+        issuesWeight = 10;
+        pullRequestWeight = 10;
+        otherWeight = 30;
+        seed = 42;
+        renamedRepos = 0;
+    }
+
+    // Options look like --name=value, see usage() for the list.
+    public void parseOption(String option) {
+        if (!option.startsWith("--") || option.indexOf('=') < 0) {
+            throw new IllegalArgumentException("bad option: " + option);
+        }
+        String name = option.substring(2, option.indexOf('='));
+        String value = option.substring(option.indexOf('=') + 1);
+        switch (name) {
+            case "hours":
+                hours = Integer.parseInt(value);
+                break;
+            case "events-per-file":
+                eventsPerFile = Integer.parseInt(value);
+                break;
+            case "repos":
+                numberOfRepo = Integer.parseInt(value);
+                break;
+            case "zipf":
+                zipfExponent = Double.parseDouble(value);
+                break;
+            case "actors-per-repo":
+                actorsPerRepo = Integer.parseInt(value);
+                break;
+            case "issues-per-repo":
+                issuesPerRepo = Integer.parseInt(value);
+                break;
+            case "prs-per-repo":
+                pullRequestsPerRepo = Integer.parseInt(value);
+                break;
+            case "max-commits-per-push":
+                maxCommitPerPush = Integer.parseInt(value);
+                break;
+            case "payload-padding":
+                payloadPadding = Integer.parseInt(value);
+                break;
+            case "mix":
+                // push:issues:pr:other, e.g. --mix=50:10:10:30
+                String[] parts = value.split(":");
+                if (parts.length != 4) {
+                    throw new IllegalArgumentException("mix must look like push:issues:pr:other, got: " + value);
+                }
+                pushWeight = Integer.parseInt(parts[0]);
+                issuesWeight = Integer.parseInt(parts[1]);
+                pullRequestWeight = Integer.parseInt(parts[2]);
+                otherWeight = Integer.parseInt(parts[3]);
+                break;
+            case "renamed-repos":
+                renamedRepos = Integer.parseInt(value);
+                break;
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown option: " + option);
+        }
+
+        if (hours <= 0 || eventsPerFile <= 0 || numberOfRepo <= 0 || actorsPerRepo <= 0 || issuesPerRepo <= 0 || pullRequestsPerRepo <= 0 || maxCommitPerPush <= 0) {
+            throw new IllegalArgumentException("counts must be positive: " + option);
+        }
+        if (zipfExponent < 0 || renamedRepos < 0 || payloadPadding < 0 || pushWeight < 0 || issuesWeight < 0 || pullRequestWeight < 0 || otherWeight < 0) {
+            throw new IllegalArgumentException("value must not be negative: " + option);
+        }
+        if (renamedRepos > numberOfRepo) {
+            throw new IllegalArgumentException("renamed-repos must not be more than repos: " + option);
+        }
+        if (pushWeight + issuesWeight + pullRequestWeight + otherWeight == 0) {
+            throw new IllegalArgumentException("event mix must not be all zero");
+        }
+    }
+
+    public static String usage() {
+        return "options (defaults in brackets):\n" +
+                "  --hours=N                 number of hourly files [1]\n" +
+                "  --events-per-file=N       events in each hourly file [100000]\n" +
+                "  --repos=N                 number of distinct repos [10000]\n" +
+                "  --zipf=S                  zipf exponent of repo popularity, 0 is uniform [1.0]\n" +
+                "  --actors-per-repo=N       distinct developers pushing to a repo [5]\n" +
+                "  --issues-per-repo=N       distinct issues of a repo [20]\n" +
+                "  --prs-per-repo=N          distinct pull requests of a repo [10]\n" +
+                "  --max-commits-per-push=N  distinct_size of a push is uniform in [1, N] [20]\n" +
+                "  --payload-padding=BYTES   filler added to every payload to control file size [512]\n" +
+                "  --mix=P:I:R:O             weights of push, issues, pull request and other events [50:10:10:30]\n" +
+                "  --renamed-repos=N         repos renamed at a random time, hot and cold ones alike [0]\n" +
+                "  --seed=N                  random seed [42]";
+    }
+
+    public int hours;
+    public int eventsPerFile;
+    public int numberOfRepo;
+    public double zipfExponent;
+    public int actorsPerRepo;
+    public int issuesPerRepo;
+    public int pullRequestsPerRepo;
+    public int maxCommitPerPush;
+    public int payloadPadding;
+    public int pushWeight;
+    public int issuesWeight;
+    public int pullRequestWeight;
+    public int otherWeight;
+    public long seed;
+    public int renamedRepos;
+}
+
+public class WorkloadGenerator {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Example: java ai.quod.challenge.WorkloadGenerator output_dir 2019-08-01T00:00:00Z [options]");
+            System.out.println(WorkloadConfig.usage());
+            return;
+        }
+
+        WorkloadConfig config = new WorkloadConfig();
+        try {
+            for (int i = 2; i < args.length; ++i) {
+                config.parseOption(args[i]);
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(WorkloadConfig.usage());
+            return;
+        }
+
+        File dir = new File(args[0]);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            System.out.println("can not create directory " + dir);
+            return;
+        }
+
+        WorkloadGenerator generator = new WorkloadGenerator(config);
+        for (File f : generator.generate(dir, ZonedDateTime.parse(args[1]))) {
+            System.out.println(f + " " + f.length() + " bytes");
+        }
+    }
+
+    public WorkloadGenerator(WorkloadConfig _config) {
+        config = _config;
+        random = new Random(config.seed);
+        nextEventId = FIRST_EVENT_ID;
+
+        // rank 1 is the hottest repo, its share is 1/1^s, rank 2 gets 1/2^s ...
+        repoCumulativeWeight = new double[config.numberOfRepo];
+        double total = 0;
+        for (int i = 0; i < config.numberOfRepo; ++i) {
+            total += 1.0 / Math.pow(i + 1, config.zipfExponent);
+            repoCumulativeWeight[i] = total;
+        }
+
+        // Track which issues and pull requests are open so actions come in a plausible order.
+        issueOpened = new BitSet(config.numberOfRepo * config.issuesPerRepo);
+        pullRequestOpened = new BitSet(config.numberOfRepo * config.pullRequestsPerRepo);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < config.payloadPadding; ++i) {
+            sb.append((char) ('a' + i % 26));
+        }
+        padding = sb.toString();
+
+        // A renamed repo keeps its id, events after the rename carry the new name.
+        repoIndexToRenameEventId = new HashMap<Integer, Long>();
+        long numberOfEvent = (long) config.hours * config.eventsPerFile;
+        for (int i = 0; i < config.renamedRepos; ++i) {
+            int repoIndex = (int) ((long) i * config.numberOfRepo / config.renamedRepos);
+            repoIndexToRenameEventId.put(repoIndex, FIRST_EVENT_ID + (long) (random.nextDouble() * numberOfEvent));
+        }
+    }
+
+    // Write config.hours files, starting at the hour that contains begin. Return the written files.
+    public ArrayList<File> generate(File dir, ZonedDateTime begin) throws IOException {
+        ArrayList<File> files = new ArrayList<File>();
+        ZonedDateTime hour = begin.withMinute(0).withSecond(0).withNano(0);
+        for (int i = 0; i < config.hours; ++i) {
+            File f = new File(dir, HealthScoreCalculator.makeResourceName(hour));
+            generateHour(f, hour);
+            files.add(f);
+            hour = hour.plusHours(1);
+        }
+
+        return files;
+    }
+
+    private void generateHour(File f, ZonedDateTime hour) throws IOException {
+        int totalWeight = config.pushWeight + config.issuesWeight + config.pullRequestWeight + config.otherWeight;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(f), 1 << 16), StandardCharsets.UTF_8), 1 << 16)) {
+            StringBuilder sb = new StringBuilder(1024 + config.payloadPadding);
+            for (int i = 0; i < config.eventsPerFile; ++i) {
+                // events of an archive are sorted by creation time
+                ZonedDateTime createdAt = hour.plusSeconds((long) i * 3600 / config.eventsPerFile);
+                int repoIndex = nextRepoIndex();
+                int r = random.nextInt(totalWeight);
+                sb.setLength(0);
+                if (r < config.pushWeight) {
+                    appendPushEvent(sb, repoIndex, createdAt);
+                } else if (r < config.pushWeight + config.issuesWeight) {
+                    appendIssuesEvent(sb, repoIndex, createdAt);
+                } else if (r < config.pushWeight + config.issuesWeight + config.pullRequestWeight) {
+                    appendPullRequestEvent(sb, repoIndex, createdAt);
+                } else {
+                    appendOtherEvent(sb, repoIndex, createdAt);
+                }
+                sb.append('\n');
+                writer.write(sb.toString());
+            }
+        }
+    }
+
+    private int nextRepoIndex() {
+        double x = random.nextDouble() * repoCumulativeWeight[repoCumulativeWeight.length - 1];
+        int index = Arrays.binarySearch(repoCumulativeWeight, x);
+        if (index < 0) {
+            index = -index - 1;
+        }
+
+        return Math.min(index, repoCumulativeWeight.length - 1);
+    }
+
+    private void appendPushEvent(StringBuilder sb, int repoIndex, ZonedDateTime createdAt) {
+        int distinctSize = 1 + random.nextInt(config.maxCommitPerPush);
+        appendHeader(sb, "PushEvent", repoIndex);
+        sb.append(",\"payload\":{\"push_id\":").append(nextEventId)
+                .append(",\"size\":").append(distinctSize)
+                .append(",\"distinct_size\":").append(distinctSize)
+                .append(",\"ref\":\"refs/heads/master\",\"description\":\"").append(padding).append("\"}");
+        appendFooter(sb, createdAt);
+    }
+
+    private void appendIssuesEvent(StringBuilder sb, int repoIndex, ZonedDateTime createdAt) {
+        int issueIndex = repoIndex * config.issuesPerRepo + random.nextInt(config.issuesPerRepo);
+        String action;
+        if (!issueOpened.get(issueIndex)) {
+            action = random.nextInt(4) == 0 ? "reopened" : "opened";
+            issueOpened.set(issueIndex);
+        } else {
+            action = random.nextInt(4) == 0 ? "labeled" : "closed";
+            if (action.equals("closed")) {
+                issueOpened.clear(issueIndex);
+            }
+        }
+        appendHeader(sb, "IssuesEvent", repoIndex);
+        sb.append(",\"payload\":{\"action\":\"").append(action)
+                .append("\",\"issue\":{\"id\":").append(ISSUE_ID_BASE + issueIndex)
+                .append(",\"number\":").append(issueIndex % config.issuesPerRepo + 1)
+                .append(",\"state\":\"").append(issueOpened.get(issueIndex) ? "open" : "closed")
+                .append("\",\"body\":\"").append(padding).append("\"}}");
+        appendFooter(sb, createdAt);
+    }
+
+    private void appendPullRequestEvent(StringBuilder sb, int repoIndex, ZonedDateTime createdAt) {
+        int pullRequestIndex = repoIndex * config.pullRequestsPerRepo + random.nextInt(config.pullRequestsPerRepo);
+        String action;
+        boolean merged = false;
+        if (!pullRequestOpened.get(pullRequestIndex)) {
+            action = "opened";
+            pullRequestOpened.set(pullRequestIndex);
+        } else {
+            action = "closed";
+            merged = random.nextInt(4) != 0;
+            pullRequestOpened.clear(pullRequestIndex);
+        }
+        appendHeader(sb, "PullRequestEvent", repoIndex);
+        sb.append(",\"payload\":{\"action\":\"").append(action)
+                .append("\",\"number\":").append(pullRequestIndex % config.pullRequestsPerRepo + 1)
+                .append(",\"pull_request\":{\"id\":").append(PULL_REQUEST_ID_BASE + pullRequestIndex)
+                .append(",\"state\":\"").append(pullRequestOpened.get(pullRequestIndex) ? "open" : "closed")
+                .append("\",\"merged\":").append(merged)
+                .append(",\"body\":\"").append(padding).append("\"}}");
+        appendFooter(sb, createdAt);
+    }
+
+    private void appendOtherEvent(StringBuilder sb, int repoIndex, ZonedDateTime createdAt) {
+        String type = OTHER_EVENT_TYPES[random.nextInt(OTHER_EVENT_TYPES.length)];
+        appendHeader(sb, type, repoIndex);
+        sb.append(",\"payload\":{\"action\":\"started\",\"description\":\"").append(padding).append("\"}");
+        appendFooter(sb, createdAt);
+    }
+
+    private void appendHeader(StringBuilder sb, String type, int repoIndex) {
+        long actorId = ACTOR_ID_BASE + (long) repoIndex * config.actorsPerRepo + random.nextInt(config.actorsPerRepo);
+        sb.append("{\"id\":\"").append(nextEventId++)
+                .append("\",\"type\":\"").append(type)
+                .append("\",\"actor\":{\"id\":").append(actorId)
+                .append(",\"login\":\"user").append(actorId)
+                .append("\"},\"repo\":{\"id\":").append(REPO_ID_BASE + repoIndex)
+                .append(",\"name\":\"org").append(repoIndex % 997)
+                .append("/repo").append(repoIndex);
+        Long renameEventId = repoIndexToRenameEventId.get(repoIndex);
+        if (renameEventId != null && nextEventId > renameEventId) {
+            sb.append("-renamed");
+        }
+        sb.append("\"}");
+    }
+
+    private void appendFooter(StringBuilder sb, ZonedDateTime createdAt) {
+        sb.append(",\"public\":true,\"created_at\":\"").append(DateTimeFormatter.ISO_INSTANT.format(createdAt)).append("\"}");
+    }
+
+    private static final String[] OTHER_EVENT_TYPES = {"WatchEvent", "CreateEvent", "ForkEvent", "IssueCommentEvent", "DeleteEvent"};
+    private static final long FIRST_EVENT_ID = 10000000000L;
+    private static final long REPO_ID_BASE = 100000000L;
+    private static final long ACTOR_ID_BASE = 1000000L;
+    private static final long ISSUE_ID_BASE = 400000000L;
+    private static final long PULL_REQUEST_ID_BASE = 300000000L;
+
+    private WorkloadConfig config;
+    private Random random;
+    private long nextEventId;
+    private double[] repoCumulativeWeight;
+    private BitSet issueOpened;
+    private BitSet pullRequestOpened;
+    private String padding;
+    private HashMap<Integer, Long> repoIndexToRenameEventId;
+}